@@ -0,0 +1,34 @@
+/**
+ * The Book class represents a book in the library.
+ * It stores details such as ID, Title, Author, Genre, and Availability status.
+ * A Book never changes once created; updating a book means replacing it with a new one.
+ */
+public class Book {
+    private final String id, title, author, genre, availability;
+
+    /**
+     * Constructor to initialize a Book object with its details.
+     */
+    public Book(String id, String title, String author, String genre, String availability) {
+        this.id = id;
+        this.title = title;
+        this.author = author;
+        this.genre = genre;
+        this.availability = availability;
+    }
+
+    // Getter methods to retrieve book details
+    public String getId() { return id; }
+    public String getTitle() { return title; }
+    public String getAuthor() { return author; }
+    public String getGenre() { return genre; }
+    public String getAvailability() { return availability; }
+
+    /**
+     * Returns a string representation of the book, useful for debugging or displaying book details.
+     */
+    @Override
+    public String toString() {
+        return "ID: " + id + ", Title: " + title + ", Author: " + author + ", Genre: " + genre + ", Availability: " + availability;
+    }
+}
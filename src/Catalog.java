@@ -0,0 +1,202 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Holds the books of the library in memory and indexes them by ID and title,
+ * so lookups do not scan the whole list. Safe to use from several threads:
+ * searches share a read lock, changes take the write lock.
+ *
+ * Books stored here are never modified in place; an update replaces the stored
+ * Book with a new one, so a Book returned by the catalog never changes under the caller.
+ */
+public class Catalog {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Books keyed by exact ID, in the order they were added
+    private final Map<String, Book> byId = new LinkedHashMap<>();
+
+    // Books keyed by lowercased ID and lowercased title, for case-insensitive search
+    private final Map<String, List<Book>> byKey = new HashMap<>();
+
+    // Books left out when the catalog was created because an earlier book had the same ID
+    private final List<Book> skippedDuplicates = new ArrayList<>();
+
+    /**
+     * Creates an empty catalog.
+     */
+    public Catalog() {
+    }
+
+    /**
+     * Creates a catalog holding the given books. Books with a repeated ID are skipped
+     * and can be listed with {@link #getSkippedDuplicates()}.
+     */
+    public Catalog(List<Book> books) {
+        for (Book book : books) {
+            if (!add(book)) {
+                skippedDuplicates.add(book);
+            }
+        }
+    }
+
+    /**
+     * Returns the books that were left out when the catalog was created because their ID was already taken.
+     */
+    public List<Book> getSkippedDuplicates() {
+        return Collections.unmodifiableList(skippedDuplicates);
+    }
+
+    /**
+     * Adds a new book.
+     * @return False if a book with the same ID already exists.
+     */
+    public boolean add(Book book) {
+        lock.writeLock().lock();
+        try {
+            if (byId.containsKey(book.getId())) {
+                return false;
+            }
+            byId.put(book.getId(), book);
+            index(book);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the book with exactly this ID, or null if there is none.
+     */
+    public Book findById(String id) {
+        lock.readLock().lock();
+        try {
+            return byId.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds a book whose ID or title matches the search term, ignoring case.
+     * @return The matching book, or null if there is none.
+     */
+    public Book search(String term) {
+        lock.readLock().lock();
+        try {
+            List<Book> matches = byKey.get(term.toLowerCase());
+            return matches == null ? null : matches.get(0);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the details of an existing book.
+     * @return The updated book, or null if no book has this ID.
+     */
+    public Book update(String id, String title, String author, String genre, String availability) {
+        lock.writeLock().lock();
+        try {
+            Book old = byId.get(id);
+            if (old == null) {
+                return null;
+            }
+            Book updated = new Book(id, title, author, genre, availability);
+            unindex(old);
+            byId.put(id, updated); // Keeps the book's original position
+            index(updated);
+            return updated;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Changes only the availability of an existing book.
+     * @return The updated book, or null if no book has this ID.
+     */
+    public Book setAvailability(String id, String availability) {
+        lock.writeLock().lock();
+        try {
+            Book old = byId.get(id);
+            return old == null ? null : update(id, old.getTitle(), old.getAuthor(), old.getGenre(), availability);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a book.
+     * @return The removed book, or null if no book has this ID.
+     */
+    public Book remove(String id) {
+        lock.writeLock().lock();
+        try {
+            Book old = byId.remove(id);
+            if (old != null) {
+                unindex(old);
+            }
+            return old;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a copy of all books, in the order they were added.
+     */
+    public List<Book> list() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(byId.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of books in the catalog.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns true if the catalog holds no books.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    private void index(Book book) {
+        byKey.computeIfAbsent(book.getId().toLowerCase(), k -> new ArrayList<>(1)).add(book);
+        String title = book.getTitle().toLowerCase();
+        if (!title.equals(book.getId().toLowerCase())) {
+            byKey.computeIfAbsent(title, k -> new ArrayList<>(1)).add(book);
+        }
+    }
+
+    private void unindex(Book book) {
+        removeKey(book.getId().toLowerCase(), book);
+        removeKey(book.getTitle().toLowerCase(), book);
+    }
+
+    private void removeKey(String key, Book book) {
+        List<Book> matches = byKey.get(key);
+        if (matches != null && matches.remove(book) && matches.isEmpty()) {
+            byKey.remove(key);
+        }
+    }
+}
@@ -0,0 +1,381 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+/**
+ * Tracks loans and holds for the books in the library and decides their availability.
+ * Every operation works on a single book looked up by ID, and due dates and hold expiries
+ * are kept in a priority queue, so nothing ever needs to scan the whole catalog.
+ * The whole state can be exported as rows of text with {@link #snapshot()} and read back with {@link #restore}.
+ */
+public class CirculationEngine {
+
+    // Availability values shared with the book dialogs
+    public static final String AVAILABLE = "Available";
+    public static final String CHECKED_OUT = "Checked Out";
+    public static final String RESERVED = "Reserved";
+    public static final String UNDER_MAINTENANCE = "Under Maintenance";
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private final long loanPeriodMillis;
+    private final long holdPeriodMillis;
+
+    // Circulation state of every book that has been touched, keyed by Book ID
+    private final Map<String, Record> records = new HashMap<>();
+
+    // Pending due dates and hold expiries, earliest first
+    private final PriorityQueue<Deadline> deadlines = new PriorityQueue<>();
+
+    // Deadlines in the queue that were superseded or cancelled; purged once they outnumber the live ones
+    private int staleDeadlines;
+
+    // Source of generation numbers, unique across records so a re-tracked book never matches an old deadline
+    private long sequence;
+
+    /**
+     * Creates an engine with a 14 day loan period and a 3 day hold pickup window.
+     */
+    public CirculationEngine() {
+        this(14 * DAY_MILLIS, 3 * DAY_MILLIS);
+    }
+
+    /**
+     * Creates an engine with custom loan and hold periods.
+     * @param loanPeriodMillis How long a checked out book may be kept.
+     * @param holdPeriodMillis How long a reserved book waits for its patron to pick it up.
+     */
+    public CirculationEngine(long loanPeriodMillis, long holdPeriodMillis) {
+        if (loanPeriodMillis <= 0 || holdPeriodMillis <= 0) {
+            throw new IllegalArgumentException("Loan and hold periods must be positive.");
+        }
+        this.loanPeriodMillis = loanPeriodMillis;
+        this.holdPeriodMillis = holdPeriodMillis;
+    }
+
+    /**
+     * Starts tracking a book with its current availability, if it is not tracked yet.
+     * A book already marked "Checked Out" or "Reserved" by hand has no known borrower or holder,
+     * so it has to be returned before it can circulate again (see {@link #returnBook}).
+     */
+    public synchronized void track(String bookId, String availability) {
+        records.computeIfAbsent(bookId, id -> new Record(availability));
+    }
+
+    /**
+     * Stops tracking a book, e.g. after it has been deleted from the library.
+     */
+    public synchronized void forget(String bookId) {
+        Record record = records.remove(bookId);
+        if (record != null) {
+            cancel(record);
+        }
+    }
+
+    /**
+     * Checks a book out to a patron. A reserved book can only be checked out by the
+     * patron at the front of its hold queue.
+     * @return The new availability of the book.
+     */
+    public synchronized String checkout(String bookId, String patron, long now) {
+        requireValidPatron(patron);
+        Record record = require(bookId);
+        if (RESERVED.equals(record.availability) && record.holder != null) {
+            if (!record.holder.equals(patron)) {
+                throw new IllegalStateException("This book is on hold for " + record.holder + ".");
+            }
+            record.holds.pollFirst();
+        } else if (RESERVED.equals(record.availability)) {
+            throw new IllegalStateException("This book is Reserved with no known holder. Return it first to release it.");
+        } else if (!AVAILABLE.equals(record.availability)) {
+            throw new IllegalStateException("This book is " + record.availability + " and cannot be checked out.");
+        }
+        record.holder = null;
+        record.borrower = patron;
+        record.availability = CHECKED_OUT;
+        schedule(bookId, record, now + loanPeriodMillis, Deadline.DUE);
+        return record.availability;
+    }
+
+    /**
+     * Returns a checked out book, or releases a book that was reserved without a known holder
+     * (reserved by hand, or before a restart). If patrons are waiting, the book is held for the first one.
+     * @return The new availability of the book.
+     */
+    public synchronized String returnBook(String bookId, long now) {
+        Record record = require(bookId);
+        boolean unheldReservation = RESERVED.equals(record.availability) && record.holder == null;
+        if (!CHECKED_OUT.equals(record.availability) && !unheldReservation) {
+            throw new IllegalStateException("This book is not checked out.");
+        }
+        record.borrower = null;
+        record.overdue = false;
+        offerToNextHold(bookId, record, now);
+        return record.availability;
+    }
+
+    /**
+     * Places a hold for a patron. An available book is reserved for the patron straight away,
+     * otherwise the patron joins the back of the book's hold queue.
+     * @return The new availability of the book.
+     */
+    public synchronized String reserve(String bookId, String patron, long now) {
+        requireValidPatron(patron);
+        Record record = require(bookId);
+        if (UNDER_MAINTENANCE.equals(record.availability)) {
+            throw new IllegalStateException("This book is under maintenance and cannot be reserved.");
+        }
+        if (patron.equals(record.borrower) || record.holds.contains(patron)) {
+            throw new IllegalStateException(patron + " already has this book or a hold on it.");
+        }
+        record.holds.addLast(patron);
+        if (AVAILABLE.equals(record.availability)) {
+            offerToNextHold(bookId, record, now);
+        }
+        return record.availability;
+    }
+
+    /**
+     * Fires every due date and hold expiry that has passed.
+     * Overdue loans are flagged, expired holds move on to the next patron in line.
+     * @return The books whose availability changed, mapped to their new availability.
+     */
+    public synchronized Map<String, String> processDue(long now) {
+        Map<String, String> changed = new LinkedHashMap<>();
+        while (!deadlines.isEmpty() && deadlines.peek().time <= now) {
+            Deadline deadline = deadlines.poll();
+            if (isStale(deadline)) {
+                staleDeadlines--;
+                continue;
+            }
+            Record record = records.get(deadline.bookId);
+            record.scheduled = false;
+            if (deadline.kind == Deadline.DUE) {
+                record.overdue = true;
+            } else {
+                record.holds.pollFirst();
+                record.holder = null;
+                String before = record.availability;
+                offerToNextHold(deadline.bookId, record, deadline.time);
+                if (!before.equals(record.availability)) {
+                    changed.put(deadline.bookId, record.availability);
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the patron who currently has the book, or null if it is not on loan.
+     */
+    public synchronized String getBorrower(String bookId) {
+        Record record = records.get(bookId);
+        return record == null ? null : record.borrower;
+    }
+
+    /**
+     * Returns the due date of the book in epoch milliseconds, or -1 if it is not on loan.
+     */
+    public synchronized long getDueDate(String bookId) {
+        Record record = records.get(bookId);
+        return record == null || record.borrower == null ? -1 : record.deadline;
+    }
+
+    /**
+     * Returns true if the book's due date has passed and it has not been returned yet.
+     */
+    public synchronized boolean isOverdue(String bookId) {
+        Record record = records.get(bookId);
+        return record != null && record.overdue;
+    }
+
+    /**
+     * Returns the patrons waiting for the book, in the order they will be served.
+     */
+    public synchronized List<String> getHoldQueue(String bookId) {
+        Record record = records.get(bookId);
+        return record == null ? Collections.emptyList() : new ArrayList<>(record.holds);
+    }
+
+    /**
+     * Exports the state of every tracked book as a row of 8 fields: Book ID, availability, borrower,
+     * holder, deadline, pending deadline kind ("due", "hold" or empty), overdue flag, and the hold queue
+     * separated by semicolons. Missing values are empty.
+     */
+    public synchronized List<String[]> snapshot() {
+        List<String[]> rows = new ArrayList<>(records.size());
+        for (Map.Entry<String, Record> entry : records.entrySet()) {
+            Record record = entry.getValue();
+            String kind = "";
+            if (record.scheduled) {
+                kind = record.holder != null && RESERVED.equals(record.availability) ? "hold" : "due";
+            }
+            rows.add(new String[]{entry.getKey(), record.availability, orEmpty(record.borrower),
+                    orEmpty(record.holder), Long.toString(record.deadline), kind,
+                    Boolean.toString(record.overdue), String.join(";", record.holds)});
+        }
+        return rows;
+    }
+
+    /**
+     * Replaces the current state with rows exported by {@link #snapshot()}.
+     * Deadlines that passed in the meantime fire on the next call to {@link #processDue}.
+     * @param rows The exported rows; malformed rows are skipped.
+     * @param currentAvailability Returns the availability the library now shows for a Book ID, or null if the
+     *        book no longer exists. Rows for missing books, or whose availability no longer matches
+     *        (e.g. the book list fell back to an older copy), are skipped so the book starts over untracked.
+     * @return The number of rows that were skipped.
+     */
+    public synchronized int restore(List<String[]> rows, Function<String, String> currentAvailability) {
+        records.clear();
+        deadlines.clear();
+        staleDeadlines = 0;
+        int skipped = 0;
+        for (String[] row : rows) {
+            if (row.length != 8 || row[0].isEmpty() || !row[1].equals(currentAvailability.apply(row[0]))) {
+                skipped++;
+                continue;
+            }
+            Record record = new Record(row[1]);
+            record.borrower = row[2].isEmpty() ? null : row[2];
+            record.holder = row[3].isEmpty() ? null : row[3];
+            record.overdue = Boolean.parseBoolean(row[6]);
+            if (!row[7].isEmpty()) {
+                Collections.addAll(record.holds, row[7].split(";"));
+            }
+            try {
+                record.deadline = Long.parseLong(row[4]);
+            } catch (NumberFormatException e) {
+                skipped++;
+                continue;
+            }
+            records.put(row[0], record);
+            if (!row[5].isEmpty()) {
+                schedule(row[0], record, record.deadline, row[5].equals("hold") ? Deadline.HOLD_EXPIRY : Deadline.DUE);
+            }
+        }
+        return skipped;
+    }
+
+    private static String orEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    /**
+     * Rejects patron names that could not be stored in a snapshot row.
+     */
+    private static void requireValidPatron(String patron) {
+        if (patron.isEmpty() || patron.contains(",") || patron.contains(";")) {
+            throw new IllegalArgumentException("Patron names must not be empty or contain commas or semicolons.");
+        }
+    }
+
+    private Record require(String bookId) {
+        Record record = records.get(bookId);
+        if (record == null) {
+            throw new IllegalStateException("Book " + bookId + " is not tracked for circulation.");
+        }
+        return record;
+    }
+
+    /**
+     * Reserves the book for the first patron in its hold queue, or makes it available if nobody is waiting.
+     */
+    private void offerToNextHold(String bookId, Record record, long now) {
+        record.holder = record.holds.peekFirst();
+        if (record.holder == null) {
+            record.availability = AVAILABLE;
+            cancel(record);
+        } else {
+            record.availability = RESERVED;
+            schedule(bookId, record, now + holdPeriodMillis, Deadline.HOLD_EXPIRY);
+        }
+    }
+
+    private void schedule(String bookId, Record record, long time, int kind) {
+        cancel(record);
+        record.scheduled = true;
+        record.deadline = time;
+        deadlines.add(new Deadline(time, bookId, kind, record.generation));
+    }
+
+    /**
+     * Invalidates the record's pending deadline, if any. The entry stays in the queue until it comes up
+     * or the queue is purged, which happens once stale entries outnumber live ones, so the queue never
+     * holds more than about twice as many deadlines as there are loans and holds.
+     */
+    private void cancel(Record record) {
+        record.generation = ++sequence;
+        if (record.scheduled) {
+            record.scheduled = false;
+            staleDeadlines++;
+            if (staleDeadlines > 64 && staleDeadlines > deadlines.size() / 2) {
+                deadlines.removeIf(this::isStale);
+                staleDeadlines = 0;
+            }
+        }
+    }
+
+    /**
+     * Returns true if the deadline belongs to a forgotten book or was superseded by a later operation.
+     */
+    private boolean isStale(Deadline deadline) {
+        Record record = records.get(deadline.bookId);
+        return record == null || record.generation != deadline.generation;
+    }
+
+    /**
+     * Returns the number of deadlines in the queue, including stale ones not purged yet.
+     */
+    synchronized int queuedDeadlines() {
+        return deadlines.size();
+    }
+
+    /**
+     * Circulation state of a single book.
+     */
+    private static class Record {
+        private String availability;
+        private String borrower, holder;
+        private long deadline;
+        private boolean overdue;
+        private long generation; // Bumped on every change so stale deadlines can be skipped
+        private boolean scheduled; // True while a live deadline for this record is in the queue
+        private final Deque<String> holds = new ArrayDeque<>();
+
+        Record(String availability) {
+            this.availability = availability;
+        }
+    }
+
+    /**
+     * A scheduled due date or hold expiry, ordered by time.
+     */
+    private static class Deadline implements Comparable<Deadline> {
+        static final int DUE = 0, HOLD_EXPIRY = 1;
+
+        private final long time;
+        private final String bookId;
+        private final int kind;
+        private final long generation;
+
+        Deadline(long time, String bookId, int kind, long generation) {
+            this.time = time;
+            this.bookId = bookId;
+            this.kind = kind;
+            this.generation = generation;
+        }
+
+        @Override
+        public int compareTo(Deadline other) {
+            return Long.compare(time, other.time);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Finds books that are probably the same work entered under different IDs.
+ * Each book gets a MinHash signature over the shingles of its normalized title and author,
+ * and locality-sensitive hashing groups the signatures into buckets so only books that
+ * share a bucket are ever compared. Books can be added and removed one at a time.
+ */
+public class DuplicateDetector {
+
+    private static final int SHINGLE_LENGTH = 3;
+    private static final Pattern ACCENTS = Pattern.compile("\\p{M}");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final int bands, rows;
+    private final double threshold;
+    private final long[] seeds;
+
+    // Signature and display label of every indexed book, keyed by Book ID
+    private final Map<String, int[]> signatures = new LinkedHashMap<>();
+    private final Map<String, String> labels = new HashMap<>();
+
+    // One bucket table per band, mapping a band hash to the IDs that share it
+    private final List<Map<Long, List<String>>> buckets = new ArrayList<>();
+
+    /**
+     * Creates a detector with 20 bands of 5 rows, which flags books that are about 60% similar.
+     */
+    public DuplicateDetector() {
+        this(20, 5, 0.6);
+    }
+
+    /**
+     * Creates a detector with a custom LSH layout.
+     * @param bands Number of bands the signature is split into.
+     * @param rows Number of MinHash values in each band.
+     * @param threshold Estimated similarity (0 to 1) at which two books are reported as duplicates.
+     */
+    public DuplicateDetector(int bands, int rows, double threshold) {
+        if (bands <= 0 || rows <= 0 || threshold <= 0 || threshold > 1) {
+            throw new IllegalArgumentException("Bands and rows must be positive and threshold must be in (0, 1].");
+        }
+        this.bands = bands;
+        this.rows = rows;
+        this.threshold = threshold;
+        this.seeds = new long[bands * rows];
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = mix(0x9E3779B97F4A7C15L * (i + 1)); // Fixed seeds keep signatures stable between runs
+        }
+        for (int b = 0; b < bands; b++) {
+            buckets.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Indexes a book, replacing any earlier entry with the same ID.
+     * @return IDs of already indexed books that look like duplicates of this one.
+     */
+    public synchronized List<String> add(String id, String title, String author) {
+        remove(id);
+        int[] signature = signature(title, author);
+
+        // Collect everything that shares at least one band bucket
+        Set<String> candidates = new HashSet<>();
+        for (int b = 0; b < bands; b++) {
+            List<String> bucket = buckets.get(b).computeIfAbsent(bandHash(signature, b), k -> new ArrayList<>(2));
+            candidates.addAll(bucket);
+            bucket.add(id);
+        }
+        signatures.put(id, signature);
+        labels.put(id, title + " by " + author);
+
+        List<String> duplicates = new ArrayList<>();
+        for (String other : candidates) {
+            if (similarity(signature, signatures.get(other)) >= threshold) {
+                duplicates.add(other);
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * Removes a book from the index, e.g. after it has been deleted or before it is re-indexed.
+     */
+    public synchronized void remove(String id) {
+        int[] signature = signatures.remove(id);
+        if (signature == null) {
+            return;
+        }
+        labels.remove(id);
+        for (int b = 0; b < bands; b++) {
+            Map<Long, List<String>> table = buckets.get(b);
+            long key = bandHash(signature, b);
+            List<String> bucket = table.get(key);
+            bucket.remove(id);
+            if (bucket.isEmpty()) {
+                table.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Groups indexed books into clusters of likely duplicates.
+     * Only books sharing a bucket are compared, and pairs above the threshold are joined with union-find.
+     * @return Clusters of at least two Book IDs, in the order the books were indexed.
+     */
+    public synchronized List<List<String>> findClusters() {
+        Map<String, String> parent = new HashMap<>();
+        Set<String> compared = new HashSet<>();
+        for (Map<Long, List<String>> table : buckets) {
+            for (List<String> members : table.values()) {
+                for (int i = 0; i < members.size(); i++) {
+                    for (int j = i + 1; j < members.size(); j++) {
+                        String a = members.get(i), b = members.get(j);
+                        String pair = a.compareTo(b) < 0 ? a + "\u0000" + b : b + "\u0000" + a;
+                        if (compared.add(pair) && similarity(signatures.get(a), signatures.get(b)) >= threshold) {
+                            parent.put(find(parent, a), find(parent, b));
+                        }
+                    }
+                }
+            }
+        }
+
+        // Collect the members of each cluster in index order
+        Map<String, List<String>> clusters = new LinkedHashMap<>();
+        for (String id : signatures.keySet()) {
+            if (parent.containsKey(id)) {
+                clusters.computeIfAbsent(find(parent, id), k -> new ArrayList<>()).add(id);
+            }
+        }
+        List<List<String>> result = new ArrayList<>();
+        for (List<String> cluster : clusters.values()) {
+            if (cluster.size() > 1) {
+                result.add(cluster);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds a readable report of all duplicate clusters for a librarian to review.
+     * Each book is listed with its estimated similarity to the first book of its cluster.
+     */
+    public synchronized String report() {
+        List<List<String>> clusters = findClusters();
+        if (clusters.isEmpty()) {
+            return "No likely duplicates among " + signatures.size() + " books.";
+        }
+        StringBuilder text = new StringBuilder();
+        text.append(clusters.size()).append(" possible duplicate group(s) among ")
+                .append(signatures.size()).append(" books:\n");
+        int number = 1;
+        for (List<String> cluster : clusters) {
+            text.append("\nGroup ").append(number++).append(":\n");
+            int[] first = signatures.get(cluster.get(0));
+            for (String id : cluster) {
+                int percent = (int) Math.round(similarity(first, signatures.get(id)) * 100);
+                text.append("  [").append(id).append("] ").append(labels.get(id))
+                        .append(" (").append(percent).append("%)\n");
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns the estimated similarity of two indexed books, or 0 if either is not indexed.
+     */
+    public synchronized double similarity(String id, String otherId) {
+        int[] a = signatures.get(id), b = signatures.get(otherId);
+        return a == null || b == null ? 0 : similarity(a, b);
+    }
+
+    /**
+     * Lowercases the text, strips accents and punctuation, and collapses whitespace,
+     * so "J.R.R. Tolkien" and "j r r  TOLKIEN" normalize the same way.
+     */
+    static String normalize(String text) {
+        String plain = ACCENTS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATORS.matcher(plain.toLowerCase()).replaceAll(" ").trim();
+    }
+
+    private int[] signature(String title, String author) {
+        String text = normalize(title) + " " + normalize(author);
+        int[] signature = new int[seeds.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+
+        // Character shingles; very short text becomes a single shingle
+        int count = Math.max(1, text.length() - SHINGLE_LENGTH + 1);
+        for (int s = 0; s < count; s++) {
+            long shingle = 0;
+            for (int c = s; c < Math.min(text.length(), s + SHINGLE_LENGTH); c++) {
+                shingle = shingle * 65537 + text.charAt(c);
+            }
+            for (int i = 0; i < seeds.length; i++) {
+                int value = (int) (mix(shingle ^ seeds[i]) >>> 33);
+                if (value < signature[i]) {
+                    signature[i] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    private long bandHash(int[] signature, int band) {
+        long hash = band;
+        for (int r = band * rows; r < (band + 1) * rows; r++) {
+            hash = mix(hash * 31 + signature[r]);
+        }
+        return hash;
+    }
+
+    private static double similarity(int[] a, int[] b) {
+        int same = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == b[i]) {
+                same++;
+            }
+        }
+        return (double) same / a.length;
+    }
+
+    private static String find(Map<String, String> parent, String id) {
+        String root = id;
+        while (parent.containsKey(root) && !parent.get(root).equals(root)) {
+            root = parent.get(root);
+        }
+        parent.put(id, root); // Path compression for the next lookup
+        return root;
+    }
+
+    /**
+     * SplitMix64 finalizer, used as a cheap family of independent hash functions.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
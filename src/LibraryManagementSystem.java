@@ -1,4 +1,5 @@
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -13,13 +14,44 @@ import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
 import javafx.scene.paint.Color;
 
-import java.io.*;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class LibraryManagementSystem extends Application {
 
+    // All books of the library, loaded from the CSV file at startup
+    private Catalog catalog;
+
+    // Writes the catalog to the CSV file in the background, reporting failed saves to the user
+    private final SnapshotStore<Book> snapshots = new SnapshotStore<>(Paths.get(CSV_FILE), SnapshotStore.BOOKS,
+            e -> Platform.runLater(() -> showAlert("Error", "Could not save the books: " + e.getMessage())));
+
+    // Tracks loans, holds and due dates for the books
+    private final CirculationEngine circulation = new CirculationEngine();
+
+    // Fires due dates and hold expiries every minute, even while nobody opens the Circulation dialog
+    private final ScheduledExecutorService circulationTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "circulation-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Writes the borrowers, due dates and hold queues to their own CSV file in the background
+    private final SnapshotStore<String[]> circulationSnapshots = new SnapshotStore<>(Paths.get(CIRCULATION_FILE),
+            SnapshotStore.ROWS,
+            e -> Platform.runLater(() -> showAlert("Error", "Could not save the loans and holds: " + e.getMessage())));
+
+    // MinHash index of titles and authors, built from the catalog on first use
+    private DuplicateDetector duplicateDetector;
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -32,6 +64,53 @@ public class LibraryManagementSystem extends Application {
     public void start(Stage primaryStage) {
         primaryStage.setTitle("Digital Library Management System");
 
+        // Load the books once; every operation below works on the in-memory catalog
+        try {
+            catalog = new Catalog(snapshots.load());
+        } catch (IOException e) {
+            // Leave the damaged files alone so nothing overwrites them
+            showAlert("Error", "The book list could not be loaded, so the files were left untouched.\n"
+                    + String.join("\n", snapshots.getRejections()));
+            Platform.exit();
+            return;
+        }
+        if (snapshots.loadedFromBackup()) {
+            showAlert("Warning", "The book list was missing or damaged, so the last good copy was loaded.\n"
+                    + String.join("\n", snapshots.getRejections()));
+        }
+
+        // Books sharing an ID with an earlier book are not loaded, and are dropped from the file on the next save
+        List<Book> skipped = catalog.getSkippedDuplicates();
+        if (!skipped.isEmpty()) {
+            StringBuilder message = new StringBuilder("These books have the same ID as an earlier book and were not loaded."
+                    + "\nThey will be removed from the book list the next time it is saved:");
+            for (Book book : skipped) {
+                message.append("\n").append(book);
+            }
+            showAlert("Warning", message.toString());
+        }
+
+        // Restore loans and holds; the books keep their availability even if this fails
+        try {
+            circulation.restore(circulationSnapshots.load(), id -> {
+                Book book = catalog.findById(id);
+                return book == null ? null : book.getAvailability();
+            });
+            if (circulationSnapshots.loadedFromBackup()) {
+                showAlert("Warning", "The loans and holds were missing or damaged, so the last good copy was loaded.\n"
+                        + String.join("\n", circulationSnapshots.getRejections()));
+            }
+        } catch (IOException e) {
+            showAlert("Warning", "The loans and holds could not be loaded, so borrowers, due dates and hold queues"
+                    + " start empty. Checked out and reserved books can be released with Return.\n"
+                    + String.join("\n", circulationSnapshots.getRejections()));
+        }
+
+        // Apply expired holds right away and then every minute, on the JavaFX thread like every other change
+        circulationTimer.scheduleAtFixedRate(
+                () -> Platform.runLater(() -> applyDueCirculation(System.currentTimeMillis())),
+                0, 1, TimeUnit.MINUTES);
+
         // --------------------------- HEADER --------------------------- //
         Label titleLabel = new Label("Library Management System");
         titleLabel.setFont(Font.font("Arial", FontWeight.BOLD, 24)); // Set font and size
@@ -57,6 +136,8 @@ public class LibraryManagementSystem extends Application {
         Button searchBookButton = createStyledButton("Search Book");
         Button updateBookButton = createStyledButton("Update Book");
         Button deleteBookButton = createStyledButton("Delete Book");
+        Button circulationButton = createStyledButton("Circulation");
+        Button duplicatesButton = createStyledButton("Find Duplicates");
         Button exitButton = createStyledButton("Exit");
 
         // --------------------------- BUTTON ACTIONS --------------------------- //
@@ -65,6 +146,8 @@ public class LibraryManagementSystem extends Application {
         searchBookButton.setOnAction(e -> searchBook());
         updateBookButton.setOnAction(e -> updateBook());
         deleteBookButton.setOnAction(e -> deleteBook());
+        circulationButton.setOnAction(e -> circulateBook());
+        duplicatesButton.setOnAction(e -> findDuplicates());
         exitButton.setOnAction(e -> primaryStage.close()); // Close the application
 
         // --------------------------- BUTTON LAYOUT --------------------------- //
@@ -73,7 +156,7 @@ public class LibraryManagementSystem extends Application {
         buttonContainer.setAlignment(Pos.CENTER); // Center buttons
         buttonContainer.getChildren().addAll(
                 addBookButton, viewBooksButton, searchBookButton,
-                updateBookButton, deleteBookButton, exitButton
+                updateBookButton, deleteBookButton, circulationButton, duplicatesButton, exitButton
         );
 
         // Ensure buttons are uniformly sized
@@ -82,6 +165,8 @@ public class LibraryManagementSystem extends Application {
         searchBookButton.setPrefWidth(200);
         updateBookButton.setPrefWidth(200);
         deleteBookButton.setPrefWidth(200);
+        circulationButton.setPrefWidth(200);
+        duplicatesButton.setPrefWidth(200);
         exitButton.setPrefWidth(200);
 
         // --------------------------- MAIN LAYOUT --------------------------- //
@@ -108,6 +193,18 @@ public class LibraryManagementSystem extends Application {
         primaryStage.show(); // Display the application window
     }
 
+    /**
+     * Waits for the last background save to finish before the application exits.
+     */
+    @Override
+    public void stop() {
+        circulationTimer.shutdownNow();
+        boolean booksSaved = snapshots.close();
+        if (!circulationSnapshots.close() || !booksSaved) {
+            showAlert("Error", "The last changes could not be saved in time and may be lost.");
+        }
+    }
+
     /**
      * Creates a styled button with hover effects.
      * @param text The text to display on the button.
@@ -236,21 +333,17 @@ public class LibraryManagementSystem extends Application {
                     return null;
                 }
 
-                // Load the existing books from the CSV file to check for duplicate IDs
-                List<Book> books = readBooksFromCSV();
-                for (Book book : books) {
-                    if (book.getId().equals(id)) {
-                        showAlert("Error", "A book with this ID already exists.");
-                        return null;
-                    }
-                }
-
                 // Create a new book object
                 Book newBook = new Book(id, title, author, genre, availability);
 
-                // Add the new book to the list and update the CSV file
-                books.add(newBook);
-                writeBooksToCSV(books);
+                // Add the new book to the catalog, which rejects duplicate IDs
+                if (!catalog.add(newBook)) {
+                    showAlert("Error", "A book with this ID already exists.");
+                    return null;
+                }
+
+                // Update the CSV file
+                saveBooks();
 
                 return newBook; // Return the new book if successfully added
             }
@@ -260,8 +353,15 @@ public class LibraryManagementSystem extends Application {
         // Show the dialog and wait for user interaction
         Optional<Book> result = dialog.showAndWait();
 
-        // If a book was added, show a success message
-        result.ifPresent(book -> showAlert("Success", "Book Added Successfully."));
+        // If a book was added, show a success message and warn about likely duplicates
+        result.ifPresent(book -> {
+            List<String> similar = getDuplicateDetector().add(book.getId(), book.getTitle(), book.getAuthor());
+            if (similar.isEmpty()) {
+                showAlert("Success", "Book Added Successfully.");
+            } else {
+                showAlert("Success", "Book Added Successfully.\nIt looks similar to book ID(s): " + String.join(", ", similar));
+            }
+        });
     }
 
 
@@ -270,8 +370,8 @@ public class LibraryManagementSystem extends Application {
      * If no books exist, it shows an alert message.
      */
     private void viewBooks() {
-        // Read the list of books from the CSV file
-        List<Book> books = readBooksFromCSV();
+        // Get the list of books from the catalog
+        List<Book> books = catalog.list();
 
         // If no books are found, show an alert and exit the method
         if (books.isEmpty()) {
@@ -370,13 +470,11 @@ public class LibraryManagementSystem extends Application {
 
         // Process the search query if the user provided an input
         result.ifPresent(searchTerm -> {
-            List<Book> books = readBooksFromCSV(); // Retrieve book list from CSV
-            for (Book book : books) {
-                // Check if the book ID or title matches the search term (case insensitive)
-                if (book.getId().equalsIgnoreCase(searchTerm) || book.getTitle().equalsIgnoreCase(searchTerm)) {
-                    showBookDetailsDialog(book); // Show book details if found
-                    return;
-                }
+            // Look up the book ID or title in the catalog (case insensitive)
+            Book book = catalog.search(searchTerm);
+            if (book != null) {
+                showBookDetailsDialog(book); // Show book details if found
+                return;
             }
             // Show an alert if no matching book was found
             showAlert("Not Found", "No book found with the given details.");
@@ -431,11 +529,8 @@ public class LibraryManagementSystem extends Application {
      * The updated details are saved back to the CSV file.
      */
     private void updateBook() {
-        // Read the list of books from the CSV file
-        List<Book> books = readBooksFromCSV();
-
         // Check if there are any books in the library
-        if (books.isEmpty()) {
+        if (catalog.isEmpty()) {
             showAlert("Information", "No books in the library to update.");
             return;
         }
@@ -473,18 +568,17 @@ public class LibraryManagementSystem extends Application {
 
         result.ifPresent(id -> {
             // Search for the book by ID
-            for (Book book : books) {
-                if (book.getId().equals(id)) {
-                    // If book is found, show the update dialog
-                    showUpdateBookDialog(book);
+            Book book = catalog.findById(id);
+            if (book != null) {
+                // If book is found, show the update dialog
+                showUpdateBookDialog(book);
 
-                    // Save the updated book list back to CSV
-                    writeBooksToCSV(books);
+                // Save the updated book list back to CSV
+                saveBooks();
 
-                    // Show success message
-                    showAlert("Success", "Book updated successfully.");
-                    return;
-                }
+                // Show success message
+                showAlert("Success", "Book updated successfully.");
+                return;
             }
 
             // Show error message if book was not found
@@ -550,12 +644,21 @@ public class LibraryManagementSystem extends Application {
                     return null; // Return null if any field is empty
                 }
 
+                // A manual availability change overrides any loan or holds on the book. Compare with the
+                // stored book, since an expired hold may have changed it while the dialog was open.
+                Book stored = catalog.findById(book.getId());
+                if (stored != null && !availabilityField.getValue().equals(stored.getAvailability())) {
+                    circulation.forget(book.getId());
+                    saveCirculation();
+                }
+
                 // Update book details with new values
-                book.setTitle(titleField.getText());
-                book.setAuthor(authorField.getText());
-                book.setGenre(genreField.getText());
-                book.setAvailability(availabilityField.getValue());
-                return book; // Return updated book
+                Book updatedBook = catalog.update(book.getId(), titleField.getText(), authorField.getText(),
+                        genreField.getText(), availabilityField.getValue());
+
+                // Re-index the book under its new title and author
+                getDuplicateDetector().add(book.getId(), updatedBook.getTitle(), updatedBook.getAuthor());
+                return updatedBook; // Return updated book
             }
             return null; // Return null if user cancels
         });
@@ -572,15 +675,12 @@ public class LibraryManagementSystem extends Application {
 
     /**
      * Deletes a book from the library based on the user-provided Book ID.
-     * The method reads the books from the CSV file, prompts the user for a Book ID,
-     * and removes the book if it exists. The updated list is then written back to the CSV file.
+     * The method prompts the user for a Book ID and removes the book from the catalog if it exists.
+     * The updated list is then written back to the CSV file.
      */
     private void deleteBook() {
-        // Read the current list of books from the CSV file
-        List<Book> books = readBooksFromCSV();
-
         // Check if there are any books to delete
-        if (books.isEmpty()) {
+        if (catalog.isEmpty()) {
             showAlert("Information", "No books in the library to delete.");
             return; // Exit the method if no books exist
         }
@@ -620,14 +720,12 @@ public class LibraryManagementSystem extends Application {
 
         // If a Book ID is provided, proceed with deletion
         result.ifPresent(id -> {
-            int initialSize = books.size(); // Store the initial number of books
-
-            // Remove the book with the given ID from the list
-            books.removeIf(book -> book.getId().equals(id));
-
-            // Check if any book was actually removed
-            if (books.size() < initialSize) {
-                writeBooksToCSV(books); // Update the CSV file with the new book list
+            // Remove the book with the given ID from the catalog, and check if any book was actually removed
+            if (catalog.remove(id) != null) {
+                circulation.forget(id); // Drop its loan and holds
+                saveCirculation();
+                getDuplicateDetector().remove(id);
+                saveBooks(); // Update the CSV file with the new book list
                 showAlert("Success", "Book deleted successfully.");
             } else {
                 showAlert("Not Found", "No book found with the given ID."); // Show an error if no match was found
@@ -636,42 +734,208 @@ public class LibraryManagementSystem extends Application {
     }
 
 
-    // Define the CSV file name
-    private static final String CSV_FILE = "books.csv";
-
     /**
-     * Reads books from the CSV file and returns a list of Book objects.
-     * Each line in the CSV is split into 5 attributes (ID, Title, Author, Genre, Availability).
+     * Displays a dialog to check out, return or reserve a book for a patron.
+     * Overdue loans and expired holds are processed first, and the resulting
+     * availability of the books is saved back to the CSV file.
      */
-    private List<Book> readBooksFromCSV() {
-        List<Book> books = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(CSV_FILE))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] data = line.split(","); // Split CSV line by commas
-                if (data.length == 5) { // Ensure data integrity
-                    books.add(new Book(data[0], data[1], data[2], data[3], data[4]));
+    private void circulateBook() {
+        // Check if there are any books to circulate
+        if (catalog.isEmpty()) {
+            showAlert("Information", "No books in the library to circulate.");
+            return;
+        }
+
+        // Create a dialog for the circulation operation
+        Dialog<Book> dialog = new Dialog<>();
+        dialog.setTitle("Circulation");
+        dialog.setHeaderText("Check Out, Return or Reserve a Book");
+
+        // Create the "Apply" and "Cancel" buttons
+        ButtonType applyButtonType = new ButtonType("Apply", ButtonBar.ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes().addAll(applyButtonType, ButtonType.CANCEL);
+
+        // Create a grid layout for input fields
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.setPadding(new Insets(20, 150, 10, 10));
+
+        // Create input fields for the operation
+        TextField idField = new TextField();
+        TextField patronField = new TextField();
+        ComboBox<String> operationField = new ComboBox<>();
+        operationField.getItems().addAll("Check Out", "Return", "Reserve");
+
+        // Set placeholder text for user guidance
+        idField.setPromptText("Book ID");
+        patronField.setPromptText("Patron (not needed for Return)");
+        operationField.setPromptText("Select Operation");
+
+        // Add labels and input fields to the grid
+        addGridRow(grid, "Book ID:", idField, 0);
+        addGridRow(grid, "Patron:", patronField, 1);
+        addGridRow(grid, "Operation:", operationField, 2);
+
+        // Set the grid as the content of the dialog
+        dialog.getDialogPane().setContent(grid);
+        idField.requestFocus(); // Auto-focus on the input field
+
+        // Handle the dialog result when "Apply" is clicked
+        dialog.setResultConverter(dialogButton -> {
+            if (dialogButton == applyButtonType) {
+                String id = idField.getText().trim();
+                String patron = patronField.getText().trim();
+                String operation = operationField.getValue();
+
+                // Validate inputs
+                if (id.isEmpty() || operation == null || (patron.isEmpty() && !operation.equals("Return"))) {
+                    showAlert("Error", "Book ID, Operation and Patron are required.");
+                    return null;
+                }
+
+                // Fire due dates and hold expiries that have passed since the last timer tick
+                long now = System.currentTimeMillis();
+                applyDueCirculation(now);
+
+                Book book = catalog.findById(id);
+                if (book != null) {
+                    circulation.track(id, book.getAvailability());
+                    String availability;
+                    try {
+                        switch (operation) {
+                            case "Check Out":
+                                availability = circulation.checkout(id, patron, now);
+                                break;
+                            case "Return":
+                                availability = circulation.returnBook(id, now);
+                                break;
+                            default:
+                                availability = circulation.reserve(id, patron, now);
+                                break;
+                        }
+                    } catch (IllegalStateException | IllegalArgumentException ex) {
+                        showAlert("Error", ex.getMessage());
+                        return null;
+                    }
+
+                    // Only save the books when an availability actually changed
+                    boolean changed = !availability.equals(book.getAvailability());
+                    if (changed) {
+                        book = catalog.setAvailability(id, availability);
+                        saveBooks();
+                    }
+                    saveCirculation(); // Every successful operation changes a loan or hold queue
+                    return book;
                 }
+
+                // Show an error if no match was found
+                showAlert("Not Found", "No book found with the given ID.");
             }
-        } catch (IOException e) {
-            System.out.println("Error reading CSV: " + e.getMessage());
+            return null; // Return null if the operation is canceled or failed
+        });
+
+        // Show the dialog and report the book's circulation status
+        Optional<Book> result = dialog.showAndWait();
+        result.ifPresent(book -> showAlert("Success", describeCirculation(book)));
+    }
+
+    /**
+     * Fires the due dates and hold expiries that have passed and applies the new availability to the catalog.
+     * Runs on the JavaFX thread, so views and searches never show a hold that has already expired.
+     */
+    private void applyDueCirculation(long now) {
+        Map<String, String> expired = circulation.processDue(now);
+        for (Map.Entry<String, String> change : expired.entrySet()) {
+            catalog.setAvailability(change.getKey(), change.getValue());
+        }
+        if (!expired.isEmpty()) {
+            saveBooks();
+            saveCirculation();
         }
-        return books;
     }
 
     /**
-     * Writes the list of books to the CSV file.
-     * Each book's attributes are joined by commas and written as a new line in the file.
+     * Builds a short summary of a book's availability, borrower, due date and hold queue.
      */
-    private void writeBooksToCSV(List<Book> books) {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(CSV_FILE))) {
-            for (Book book : books) {
-                bw.write(String.join(",", book.getId(), book.getTitle(), book.getAuthor(), book.getGenre(), book.getAvailability()));
-                bw.newLine(); // Move to next line for each book
+    private String describeCirculation(Book book) {
+        StringBuilder text = new StringBuilder(book.getTitle() + " is now " + book.getAvailability() + ".");
+        String borrower = circulation.getBorrower(book.getId());
+        if (borrower != null) {
+            String due = new SimpleDateFormat("yyyy-MM-dd").format(new Date(circulation.getDueDate(book.getId())));
+            text.append("\nBorrower: ").append(borrower).append(", due ").append(due);
+            if (circulation.isOverdue(book.getId())) {
+                text.append(" (overdue)");
+            }
+        }
+        List<String> holds = circulation.getHoldQueue(book.getId());
+        if (!holds.isEmpty()) {
+            text.append("\nHold queue: ").append(String.join(", ", holds));
+        }
+        return text.toString();
+    }
+
+
+    /**
+     * Displays a report of books that look like the same work entered under different IDs.
+     */
+    private void findDuplicates() {
+        // Create a dialog to show the report
+        Dialog<Void> dialog = new Dialog<>();
+        dialog.setTitle("Find Duplicates");
+        dialog.setHeaderText("Possible Duplicate Books");
+
+        // Show the report in a read-only text area so it can be copied
+        TextArea reportArea = new TextArea(getDuplicateDetector().report());
+        reportArea.setEditable(false);
+        reportArea.setPrefWidth(600);
+        reportArea.setPrefHeight(400);
+
+        // Set the text area as the content of the dialog
+        dialog.getDialogPane().setContent(reportArea);
+
+        // Add a close button to the dialog
+        dialog.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+
+        // Show the dialog and wait for user interaction
+        dialog.showAndWait();
+    }
+
+    /**
+     * Returns the duplicate detector, indexing all books in the catalog the first time it is needed.
+     * After that it is kept up to date as books are added, updated and deleted.
+     */
+    private DuplicateDetector getDuplicateDetector() {
+        if (duplicateDetector == null) {
+            duplicateDetector = new DuplicateDetector();
+            for (Book book : catalog.list()) {
+                duplicateDetector.add(book.getId(), book.getTitle(), book.getAuthor());
             }
-        } catch (IOException e) {
-            System.out.println("Error writing CSV: " + e.getMessage());
         }
+        return duplicateDetector;
+    }
+
+
+    // Define the CSV file name
+    private static final String CSV_FILE = "books.csv";
+
+    // Borrowers, due dates and hold queues, kept apart so the book list stays a plain CSV of books
+    private static final String CIRCULATION_FILE = "circulation.csv";
+
+    /**
+     * Saves the catalog to the CSV file without blocking the user interface.
+     * The writer thread copies the list of books when it starts writing; stored books are never
+     * modified in place, so the copy is consistent even while further edits are made.
+     */
+    private void saveBooks() {
+        snapshots.saveInBackground(catalog::list);
+    }
+
+    /**
+     * Saves the loans and holds to their CSV file without blocking the user interface.
+     */
+    private void saveCirculation() {
+        circulationSnapshots.saveInBackground(circulation::snapshot);
     }
 
     /**
@@ -686,44 +950,4 @@ public class LibraryManagementSystem extends Application {
         alert.showAndWait();
     }
 
-    /**
-     * The Book class represents a book in the library.
-     * It stores details such as ID, Title, Author, Genre, and Availability status.
-     */
-    class Book {
-        private String id, title, author, genre, availability;
-
-        /**
-         * Constructor to initialize a Book object with its details.
-         */
-        public Book(String id, String title, String author, String genre, String availability) {
-            this.id = id;
-            this.title = title;
-            this.author = author;
-            this.genre = genre;
-            this.availability = availability;
-        }
-
-        // Getter methods to retrieve book details
-        public String getId() { return id; }
-        public String getTitle() { return title; }
-        public String getAuthor() { return author; }
-        public String getGenre() { return genre; }
-        public String getAvailability() { return availability; }
-
-        // Setter methods to update book details
-        public void setTitle(String title) { this.title = title; }
-        public void setAuthor(String author) { this.author = author; }
-        public void setGenre(String genre) { this.genre = genre; }
-        public void setAvailability(String availability) { this.availability = availability; }
-
-        /**
-         * Returns a string representation of the book, useful for debugging or displaying book details.
-         */
-        @Override
-        public String toString() {
-            return "ID: " + id + ", Title: " + title + ", Author: " + author + ", Genre: " + genre + ", Availability: " + availability;
-        }
-    }
-
 }
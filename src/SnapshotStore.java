@@ -0,0 +1,368 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+
+/**
+ * Saves and loads lists of records, such as the books, as CSV snapshots that survive crashes and full disks.
+ * A {@link Codec} turns each record into one CSV line and back.
+ *
+ * A snapshot is written to a temporary file, forced to disk, and then renamed over the
+ * CSV file, so the CSV file is always either the old or the new snapshot, never half of one.
+ * Before the rename the current snapshot is linked (or copied) to the backup file, so the CSV
+ * file itself is never moved away. The last line of every snapshot is a CRC32C checksum of the
+ * lines above it, and loading falls back to the backup if the main file is missing or fails its checksum.
+ */
+public class SnapshotStore<T> {
+
+    /**
+     * Turns a record into a CSV line and back.
+     */
+    public interface Codec<R> {
+        String format(R record);
+
+        /**
+         * Parses a CSV line, or returns null if the line is malformed and should be skipped.
+         */
+        R parse(String line);
+    }
+
+    /**
+     * Stores books as 5 attributes per line (ID, Title, Author, Genre, Availability).
+     */
+    public static final Codec<Book> BOOKS = new Codec<Book>() {
+        @Override
+        public String format(Book book) {
+            return String.join(",", book.getId(), book.getTitle(), book.getAuthor(), book.getGenre(),
+                    book.getAvailability());
+        }
+
+        @Override
+        public Book parse(String line) {
+            String[] fields = line.split(","); // Split CSV line by commas
+            return fields.length == 5 ? new Book(fields[0], fields[1], fields[2], fields[3], fields[4]) : null;
+        }
+    };
+
+    /**
+     * Stores plain rows of fields. Empty fields are kept, so a row always reads back with as many fields as it had.
+     */
+    public static final Codec<String[]> ROWS = new Codec<String[]>() {
+        @Override
+        public String format(String[] row) {
+            return String.join(",", row);
+        }
+
+        @Override
+        public String[] parse(String line) {
+            return line.split(",", -1);
+        }
+    };
+
+    // First line of every snapshot written by this store, so its files are never taken for legacy CSV files
+    private static final String HEADER = "#snapshot=1";
+    private static final String CHECKSUM_PREFIX = "#crc32c=";
+
+    private final Path file, backup, temp, backupTemp;
+    private final Codec<T> codec;
+    private final Consumer<IOException> onError;
+
+    // A single writer thread, so snapshots reach the disk in order
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "snapshot-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // True while a background save is queued but has not taken its snapshot yet
+    private final AtomicBoolean savePending = new AtomicBoolean();
+
+    private boolean loadedFromBackup;
+
+    // Why the snapshots skipped by the last load were rejected, one line per file
+    private final List<String> rejections = new ArrayList<>();
+
+    // True once the CSV file is known to be good, i.e. it was loaded or written by this store
+    private boolean fileVerified;
+
+    // Records of a CSV file loaded without a checksum line, kept until the first save turns them into the backup
+    private List<T> legacyRecords;
+
+    /**
+     * Creates a store for the given CSV file.
+     * @param file The CSV file; the backup and temporary files are kept next to it.
+     * @param codec Turns the records into CSV lines and back, e.g. {@link #BOOKS}.
+     * @param onError Called on the writer thread when a background save fails.
+     */
+    public SnapshotStore(Path file, Codec<T> codec, Consumer<IOException> onError) {
+        this.file = file;
+        this.backup = file.resolveSibling(file.getFileName() + ".bak");
+        this.temp = file.resolveSibling(file.getFileName() + ".tmp");
+        this.backupTemp = file.resolveSibling(file.getFileName() + ".bak.tmp");
+        this.codec = codec;
+        this.onError = onError;
+    }
+
+    /**
+     * Loads the newest snapshot that passes its checksum, trying the CSV file and then its backup.
+     * A CSV file without a checksum line is accepted only if there is no backup and it does not start
+     * with the snapshot header, which means it was written before snapshots had checksums.
+     * The first save then keeps a checksummed copy of it as the backup.
+     * @return The records in the snapshot, or an empty list if no snapshot exists yet.
+     * @throws IOException If snapshots exist but none of them can be read or verified.
+     */
+    public synchronized List<T> load() throws IOException {
+        loadedFromBackup = false;
+        rejections.clear();
+        boolean legacyAllowed = !Files.exists(backup);
+        if (!Files.exists(file) && legacyAllowed) {
+            return new ArrayList<>(); // First run
+        }
+
+        IOException failure = null;
+        for (Path candidate : new Path[]{file, backup}) {
+            if (!Files.exists(candidate)) {
+                rejections.add(candidate.getFileName() + " is missing");
+                continue;
+            }
+            try {
+                byte[] data = Files.readAllBytes(candidate);
+                List<T> records;
+                try {
+                    records = decode(data, false);
+                    legacyRecords = null;
+                } catch (IOException e) {
+                    if (!legacyAllowed) {
+                        throw e;
+                    }
+                    records = decode(data, true);
+                    legacyRecords = new ArrayList<>(records);
+                }
+                loadedFromBackup = candidate.equals(backup);
+                fileVerified = !loadedFromBackup;
+                return records;
+            } catch (IOException e) {
+                rejections.add(candidate.getFileName() + ": " + e.getMessage());
+                failure = e;
+            }
+        }
+        throw new IOException("No valid snapshot. " + String.join(". ", rejections) + ".", failure);
+    }
+
+    /**
+     * Returns true if the last load had to use the backup because the CSV file was missing or damaged.
+     */
+    public synchronized boolean loadedFromBackup() {
+        return loadedFromBackup;
+    }
+
+    /**
+     * Returns why each snapshot skipped by the last load was rejected, e.g. "books.csv: Checksum mismatch".
+     */
+    public synchronized List<String> getRejections() {
+        return new ArrayList<>(rejections);
+    }
+
+    /**
+     * Writes a snapshot on the background thread and returns immediately.
+     * The records are fetched when the write starts, so several saves requested while one is
+     * queued are merged into a single write of the latest state.
+     * @param snapshot Supplies the records to write; called on the writer thread.
+     */
+    public void saveInBackground(Supplier<List<T>> snapshot) {
+        saveInBackground(snapshot, () -> { });
+    }
+
+    /**
+     * Writes a snapshot on the background thread like {@link #saveInBackground(Supplier)}.
+     * @param onWritten Called on the writer thread once the snapshot is on disk; not called if the write fails.
+     */
+    public void saveInBackground(Supplier<List<T>> snapshot, Runnable onWritten) {
+        if (savePending.compareAndSet(false, true)) {
+            writer.execute(() -> {
+                savePending.set(false); // Changes from now on need another save
+                try {
+                    write(snapshot.get());
+                    onWritten.run();
+                } catch (IOException e) {
+                    onError.accept(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes a snapshot right away on the calling thread.
+     * @throws IOException If the snapshot could not be written; the previous snapshot is then left untouched.
+     */
+    public synchronized void write(List<T> records) throws IOException {
+        // Write the new snapshot next to the old one and force it to disk
+        writeAndForce(temp, encode(records));
+
+        if (legacyRecords != null) {
+            // The CSV file has no checksum line, and load() only trusts checksummed files once a backup
+            // exists. So instead of moving it, keep a checksummed copy of its records as the backup.
+            writeAndForce(backupTemp, encode(legacyRecords));
+            Files.move(backupTemp, backup, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            legacyRecords = null;
+        } else if (fileVerified && Files.exists(file)) {
+            // Keep the current snapshot as the backup while leaving it in place, so a crash at any
+            // point still finds a complete CSV file. A damaged or unchecked CSV file is not backed up,
+            // so it never overwrites a good backup.
+            backUp(file);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (!Files.exists(backup)) {
+            // First snapshot written by this store. Back it up as well, so from now on load()
+            // never mistakes a damaged CSV file for one written before snapshots had checksums.
+            backUp(file);
+        }
+        syncDirectory();
+        fileVerified = true;
+    }
+
+    /**
+     * Replaces the backup with the given snapshot. The snapshot is hard linked to a temporary
+     * name, or copied where the file system has no hard links, and then renamed over the backup.
+     */
+    private void backUp(Path snapshot) throws IOException {
+        if (Files.exists(backup) && Files.isSameFile(snapshot, backup)) {
+            return; // Already linked, e.g. right after the first snapshot
+        }
+        Files.deleteIfExists(backupTemp);
+        try {
+            Files.createLink(backupTemp, snapshot);
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(snapshot, backupTemp, StandardCopyOption.REPLACE_EXISTING);
+            try (FileChannel channel = FileChannel.open(backupTemp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+        Files.move(backupTemp, backup, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Finishes any queued background save and stops the writer thread.
+     * @return False if the last save did not finish within 30 seconds.
+     */
+    public boolean close() {
+        writer.shutdown();
+        try {
+            return writer.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Writes the data to a file, replacing its contents, and forces it to disk.
+     */
+    private static void writeAndForce(Path target, byte[] data) throws IOException {
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Forces the renames to disk. Directories cannot be opened on some platforms (e.g. Windows),
+     * where the rename is already durable once it returns.
+     */
+    private void syncDirectory() {
+        Path directory = file.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported here
+        }
+    }
+
+    /**
+     * Turns the records into the header line, the CSV lines and the checksum line.
+     */
+    byte[] encode(List<T> records) {
+        StringBuilder text = new StringBuilder(HEADER).append(System.lineSeparator());
+        for (T record : records) {
+            text.append(codec.format(record)).append(System.lineSeparator());
+        }
+        byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] trailer = (CHECKSUM_PREFIX + String.format("%08x", checksum(body))
+                + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+
+        byte[] data = new byte[body.length + trailer.length];
+        System.arraycopy(body, 0, data, 0, body.length);
+        System.arraycopy(trailer, 0, data, body.length, trailer.length);
+        return data;
+    }
+
+    /**
+     * Verifies the checksum line and parses the CSV lines above it, skipping the header, blank lines
+     * and lines the codec cannot parse.
+     * Without a checksum line the data is only accepted if legacy files are allowed and it does not start
+     * with the header, since a snapshot written by this store that lost its last line has been truncated.
+     */
+    List<T> decode(byte[] data, boolean legacyAllowed) throws IOException {
+        String text = new String(data, StandardCharsets.UTF_8);
+        int end = text.length();
+        while (end > 0 && (text.charAt(end - 1) == '\n' || text.charAt(end - 1) == '\r')) {
+            end--;
+        }
+        int trailerStart = text.lastIndexOf('\n', end - 1) + 1;
+        String lastLine = text.substring(trailerStart, end);
+
+        String body;
+        if (lastLine.startsWith(CHECKSUM_PREFIX)) {
+            body = text.substring(0, trailerStart);
+            byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+            long expected;
+            try {
+                expected = Long.parseLong(lastLine.substring(CHECKSUM_PREFIX.length()), 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Unreadable checksum line");
+            }
+            if (checksum(bodyBytes) != expected) {
+                throw new IOException("Checksum mismatch");
+            }
+        } else if (legacyAllowed && !text.startsWith("#")) {
+            body = text;
+        } else {
+            throw new IOException("Missing checksum line, the snapshot may be truncated");
+        }
+
+        List<T> records = new ArrayList<>();
+        for (String line : body.split("\r?\n")) {
+            if (line.isEmpty() || line.equals(HEADER)) {
+                continue;
+            }
+            T record = codec.parse(line);
+            if (record != null) { // Ensure data integrity
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    private static long checksum(byte[] data) {
+        CRC32C crc = new CRC32C();
+        crc.update(data);
+        return crc.getValue();
+    }
+}
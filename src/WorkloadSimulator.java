@@ -0,0 +1,529 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator for the catalog. Fills a Catalog with synthetic books, then runs many client
+ * threads that replay a weighted mix of add, search, update and delete operations against it,
+ * with Zipfian key popularity. Reports throughput and p50/p99/p999 latency per operation.
+ *
+ * Runs without the user interface, for example:
+ *   java WorkloadSimulator --books=100000 --clients=16 --mode=open --rate=200000 --mix=search:80,update:15,add:3,delete:2
+ *
+ * With --persist=FILE every change also saves the catalog to FILE through a SnapshotStore, the way the
+ * application does, and the report adds how many snapshots were written and how long changes waited for one.
+ *
+ * In closed-loop mode each client issues its next operation as soon as the previous one finishes.
+ * In open-loop mode operations arrive on a fixed schedule, and latency is measured from the
+ * scheduled start, so time spent waiting behind a slow operation is included. Arrivals stop when
+ * the run ends; arrivals still waiting at that point are counted as dropped instead of being drained.
+ */
+public class WorkloadSimulator {
+
+    private static final String[] OPERATIONS = {"add", "search", "update", "delete"};
+    private static final int ADD = 0, SEARCH = 1, UPDATE = 2, DELETE = 3;
+
+    private static final String[] WORDS = {"Silent", "River", "Shadow", "Garden", "Empire", "Winter", "Glass",
+            "Memory", "Ocean", "Stone", "Light", "Forest", "Machine", "Night", "Crown", "Letter", "Island", "Fire"};
+    private static final String[] FIRST_NAMES = {"Anna", "Ravi", "Maria", "John", "Aiko", "Omar", "Lena", "Chen"};
+    private static final String[] LAST_NAMES = {"Rao", "Smith", "Garcia", "Tanaka", "Haddad", "Novak", "Li", "Okafor"};
+    private static final String[] GENRES = {"Fiction", "Science", "History", "Poetry", "Fantasy", "Biography"};
+    private static final String[] AVAILABILITY = {CirculationEngine.AVAILABLE, CirculationEngine.CHECKED_OUT,
+            CirculationEngine.RESERVED, CirculationEngine.UNDER_MAINTENANCE};
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = parseOptions(args);
+        int bookCount = Integer.parseInt(options.getOrDefault("books", "100000"));
+        int clients = Integer.parseInt(options.getOrDefault("clients", "8"));
+        double seconds = Double.parseDouble(options.getOrDefault("seconds", "10"));
+        double warmup = Double.parseDouble(options.getOrDefault("warmup", "2"));
+        double zipfTheta = Double.parseDouble(options.getOrDefault("zipf", "0.99"));
+        String mode = options.getOrDefault("mode", "closed");
+        double rate = Double.parseDouble(options.getOrDefault("rate", "100000"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        int[] mix = parseMix(options.getOrDefault("mix", "search:70,update:20,add:5,delete:5"));
+        String persist = options.get("persist");
+
+        if (!mode.equals("closed") && !mode.equals("open")) {
+            throw new IllegalArgumentException("Mode must be closed or open.");
+        }
+        if (bookCount <= 0 || clients <= 0) {
+            throw new IllegalArgumentException("Books and clients must be positive.");
+        }
+        if (!(seconds > 0) || !(warmup >= 0) || Double.isInfinite(seconds) || Double.isInfinite(warmup)) {
+            throw new IllegalArgumentException("Seconds must be positive and warmup must not be negative.");
+        }
+        // Each open-loop client needs an arrival interval between one nanosecond and the length of the run
+        if (mode.equals("open") && !(rate >= clients / seconds && rate <= 1e9 * clients)) {
+            throw new IllegalArgumentException(String.format("Rate must be between %.3f and %.0f ops/s for %d clients"
+                    + " over %.1fs.", clients / seconds, 1e9 * clients, clients, seconds));
+        }
+
+        System.out.println("Generating " + bookCount + " synthetic books...");
+        Catalog catalog = new Catalog(generateCatalog(bookCount, seed));
+
+        Workload workload = new Workload(catalog, bookCount, new ZipfianGenerator(bookCount, zipfTheta), mix);
+        System.out.printf("Running %s loop with %d clients for %.1fs (after %.1fs warmup)%s%n", mode, clients,
+                seconds, warmup, mode.equals("open") ? String.format(", target %.0f ops/s", rate) : "");
+
+        // Warm up the JIT with the same workload, then discard its results
+        run(workload, clients, warmup, mode, rate, seed ^ 0x5DEECE66DL);
+        if (persist != null) {
+            workload.saver = new Saver(Paths.get(persist), catalog);
+        }
+        Result result = run(workload, clients, seconds, mode, rate, seed);
+
+        System.out.println();
+        System.out.printf("%-8s %12s %12s %10s %10s %10s %10s%n",
+                "op", "count", "ops/s", "p50 us", "p99 us", "p999 us", "max us");
+        LatencyHistogram total = new LatencyHistogram();
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            if (result.histograms[op].count() > 0) {
+                printRow(OPERATIONS[op], result.histograms[op], result.elapsedNanos);
+                total.add(result.histograms[op]);
+            }
+        }
+        printRow("total", total, result.elapsedNanos);
+        if (mode.equals("open")) {
+            // Offered load is what arrived during the run, achieved load is what the clients completed
+            long offered = total.count() + result.dropped;
+            System.out.printf("%nOffered %.0f ops/s (target %.0f), achieved %.0f ops/s, %d arrivals dropped (%.2f%%)%n",
+                    offered * 1e9 / result.elapsedNanos, rate, total.count() * 1e9 / result.elapsedNanos,
+                    result.dropped, offered == 0 ? 0 : 100.0 * result.dropped / offered);
+        }
+        System.out.printf("%nElapsed %.3fs, catalog size at end: %d books%n", result.elapsedNanos / 1e9, catalog.size());
+        if (workload.saver != null) {
+            workload.saver.finish();
+        }
+    }
+
+    /**
+     * Generates a synthetic catalog of books with IDs B0 .. B(count - 1) and made-up titles and authors.
+     */
+    static List<Book> generateCatalog(int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Book> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            books.add(randomBook("B" + i, random));
+        }
+        return books;
+    }
+
+    private static Book randomBook(String id, SplittableRandom random) {
+        String title = "The " + pick(WORDS, random) + " " + pick(WORDS, random) + " " + random.nextInt(1000);
+        String author = pick(FIRST_NAMES, random) + " " + pick(LAST_NAMES, random);
+        return new Book(id, title, author, pick(GENRES, random), pick(AVAILABILITY, random));
+    }
+
+    private static String pick(String[] values, SplittableRandom random) {
+        return values[random.nextInt(values.length)];
+    }
+
+    /**
+     * Runs the workload on a number of client threads for a fixed time and merges their latencies.
+     * The elapsed time is measured up to the moment the last client finished.
+     */
+    private static Result run(Workload workload, int clients, double seconds, String mode, double rate, long seed)
+            throws InterruptedException {
+        long duration = (long) (seconds * 1e9);
+        long start = System.nanoTime() + 10_000_000; // Give every thread time to start
+        long end = start + duration;
+        long interval = mode.equals("open") ? (long) (1e9 * clients / rate) : 0;
+
+        Client[] workers = new Client[clients];
+        Thread[] threads = new Thread[clients];
+        for (int c = 0; c < clients; c++) {
+            // Stagger open-loop clients so their arrivals are spread over the interval
+            long stagger = (long) ((double) interval * c / clients);
+            workers[c] = new Client(workload, new SplittableRandom(seed + c), start + stagger, end, interval);
+            threads[c] = new Thread(workers[c], "load-client-" + c);
+            threads[c].start();
+        }
+
+        Result result = new Result();
+        long finished = start;
+        for (int c = 0; c < clients; c++) {
+            threads[c].join();
+            for (int op = 0; op < OPERATIONS.length; op++) {
+                result.histograms[op].add(workers[c].histograms[op]);
+            }
+            result.dropped += workers[c].dropped;
+            finished = Math.max(finished, workers[c].finished);
+        }
+        result.elapsedNanos = Math.max(1, finished - start);
+        return result;
+    }
+
+    private static void printRow(String name, LatencyHistogram histogram, long elapsedNanos) {
+        System.out.printf("%-8s %12d %12.0f %10.1f %10.1f %10.1f %10.1f%n", name, histogram.count(),
+                histogram.count() * 1e9 / elapsedNanos, histogram.percentile(50) / 1e3,
+                histogram.percentile(99) / 1e3, histogram.percentile(99.9) / 1e3, histogram.max() / 1e3);
+    }
+
+    /**
+     * Parses arguments of the form --name=value.
+     */
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got: " + arg);
+            }
+            options.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        return options;
+    }
+
+    /**
+     * Parses an operation mix like "search:70,update:20,add:5,delete:5" into cumulative weights.
+     * Each operation may appear once, with a weight of zero or more; operations left out get weight zero.
+     */
+    private static int[] parseMix(String text) {
+        int[] weights = new int[OPERATIONS.length];
+        boolean[] seen = new boolean[OPERATIONS.length];
+        for (String part : text.split(",")) {
+            String[] pair = part.split(":");
+            int op = List.of(OPERATIONS).indexOf(pair[0].trim());
+            if (pair.length != 2 || op < 0) {
+                throw new IllegalArgumentException("Unknown operation in mix: " + part);
+            }
+            if (seen[op]) {
+                throw new IllegalArgumentException("Operation appears twice in mix: " + OPERATIONS[op]);
+            }
+            seen[op] = true;
+            weights[op] = Integer.parseInt(pair[1].trim());
+            if (weights[op] < 0) {
+                throw new IllegalArgumentException("Weights in mix must not be negative: " + part);
+            }
+        }
+        for (int op = 1; op < weights.length; op++) {
+            weights[op] = Math.addExact(weights[op], weights[op - 1]); // Fails rather than wrap around
+        }
+        if (weights[weights.length - 1] <= 0) {
+            throw new IllegalArgumentException("The operation mix must have a positive total weight.");
+        }
+        return weights;
+    }
+
+    /**
+     * The operations the clients replay against the catalog, shared by all client threads.
+     */
+    private static class Workload {
+        private final Catalog catalog;
+        private final int bookCount;
+        private final ZipfianGenerator keys;
+        private final int[] mix;
+
+        // IDs for new books, and the books added by the workload that deletes remove first
+        private final AtomicLong nextId = new AtomicLong();
+        private final ConcurrentLinkedQueue<String> added = new ConcurrentLinkedQueue<>();
+
+        // Saves the catalog after every change when --persist is given; set before the clients start
+        private Saver saver;
+
+        Workload(Catalog catalog, int bookCount, ZipfianGenerator keys, int[] mix) {
+            this.catalog = catalog;
+            this.bookCount = bookCount;
+            this.keys = keys;
+            this.mix = mix;
+        }
+
+        int nextOperation(SplittableRandom random) {
+            int roll = random.nextInt(mix[mix.length - 1]);
+            int op = 0;
+            while (roll >= mix[op]) {
+                op++;
+            }
+            return op;
+        }
+
+        void execute(int op, SplittableRandom random) {
+            switch (op) {
+                case ADD: {
+                    String id = "N" + nextId.getAndIncrement();
+                    catalog.add(randomBook(id, random));
+                    added.add(id);
+                    changed();
+                    break;
+                }
+                case SEARCH: {
+                    // Search by ID or by title, like the Search Book dialog
+                    String id = "B" + keys.next(random);
+                    Book book = catalog.findById(id);
+                    if (book != null && random.nextBoolean()) {
+                        catalog.search(book.getTitle());
+                    } else {
+                        catalog.search(id);
+                    }
+                    break;
+                }
+                case UPDATE:
+                    catalog.setAvailability("B" + keys.next(random), pick(AVAILABILITY, random));
+                    changed();
+                    break;
+                default: {
+                    // Delete books added during the run first, so the popular keys stay in the catalog
+                    String id = added.poll();
+                    catalog.remove(id != null ? id : "B" + keys.next(random));
+                    changed();
+                    break;
+                }
+            }
+        }
+
+        private void changed() {
+            if (saver != null) {
+                saver.changed();
+            }
+        }
+    }
+
+    /**
+     * Saves the catalog in the background after every change, and measures snapshot throughput and
+     * save lag: the time from the oldest change a snapshot contains until that snapshot is on disk.
+     */
+    private static class Saver {
+        private final SnapshotStore<Book> store;
+        private final Catalog catalog;
+        private final long started = System.nanoTime();
+        private final AtomicLong changes = new AtomicLong();
+
+        // When the oldest change not yet taken into a snapshot was made, or 0 if there is none
+        private final AtomicLong oldestUnsaved = new AtomicLong();
+
+        // Only used on the writer thread, and read after the store is closed
+        private final LatencyHistogram lag = new LatencyHistogram();
+        private long snapshotOldest, written, failed;
+        private IOException lastFailure;
+
+        Saver(Path file, Catalog catalog) {
+            this.store = new SnapshotStore<>(file, SnapshotStore.BOOKS, e -> {
+                failed++;
+                lastFailure = e;
+            });
+            this.catalog = catalog;
+        }
+
+        void changed() {
+            changes.incrementAndGet();
+            oldestUnsaved.compareAndSet(0, System.nanoTime());
+            store.saveInBackground(this::takeSnapshot, this::snapshotWritten);
+        }
+
+        private List<Book> takeSnapshot() {
+            snapshotOldest = oldestUnsaved.getAndSet(0);
+            return catalog.list();
+        }
+
+        private void snapshotWritten() {
+            written++;
+            if (snapshotOldest != 0) {
+                lag.record(System.nanoTime() - snapshotOldest);
+            }
+        }
+
+        /**
+         * Waits for the last snapshot and prints the save statistics.
+         */
+        void finish() {
+            boolean closed = store.close();
+            double seconds = (System.nanoTime() - started) / 1e9;
+            System.out.printf("Saves: %d changes, %d snapshots written (%.1f/s, %.0f changes per snapshot)%s%n",
+                    changes.get(), written, written / seconds, written == 0 ? 0.0 : (double) changes.get() / written,
+                    closed ? "" : ", last snapshot still unfinished after 30s");
+            System.out.printf("Save lag: p50 %.1f ms, p99 %.1f ms, max %.1f ms%n", lag.percentile(50) / 1e6,
+                    lag.percentile(99) / 1e6, lag.max() / 1e6);
+            if (failed > 0) {
+                System.out.printf("%d snapshots failed, the last with: %s%n", failed, lastFailure.getMessage());
+            }
+        }
+    }
+
+    /**
+     * One client thread, with its own random source and latency histograms.
+     */
+    private static class Client implements Runnable {
+        private final Workload workload;
+        private final SplittableRandom random;
+        private final long start, end, interval;
+        private final LatencyHistogram[] histograms = new LatencyHistogram[OPERATIONS.length];
+
+        // When the client stopped, and how many open-loop arrivals it had not started by then
+        private long finished, dropped;
+
+        Client(Workload workload, SplittableRandom random, long start, long end, long interval) {
+            this.workload = workload;
+            this.random = random;
+            this.start = start;
+            this.end = end;
+            this.interval = interval;
+            for (int op = 0; op < histograms.length; op++) {
+                histograms[op] = new LatencyHistogram();
+            }
+        }
+
+        @Override
+        public void run() {
+            waitUntil(start);
+            long scheduled = start;
+            while (true) {
+                long began;
+                if (interval > 0) {
+                    // Open loop: wait for the next scheduled arrival, never skip one that is late
+                    waitUntil(scheduled);
+                    if (scheduled < end && System.nanoTime() >= end) {
+                        // The run is over but this client is behind; drop its backlog instead of draining it
+                        dropped = (end - scheduled + interval - 1) / interval;
+                    }
+                    began = scheduled;
+                    scheduled += interval;
+                } else {
+                    began = System.nanoTime();
+                }
+                if (began >= end || dropped > 0) {
+                    finished = System.nanoTime();
+                    return;
+                }
+                int op = workload.nextOperation(random);
+                workload.execute(op, random);
+                histograms[op].record(System.nanoTime() - began);
+            }
+        }
+
+        private static void waitUntil(long time) {
+            long remaining;
+            while ((remaining = time - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remaining);
+            }
+        }
+    }
+
+    private static class Result {
+        private final LatencyHistogram[] histograms = new LatencyHistogram[OPERATIONS.length];
+        private long elapsedNanos, dropped;
+
+        Result() {
+            for (int op = 0; op < histograms.length; op++) {
+                histograms[op] = new LatencyHistogram();
+            }
+        }
+    }
+
+    /**
+     * Picks ranks 0 .. n - 1 so that rank k is chosen with probability proportional to 1 / (k + 1)^theta.
+     * Uses the constant time method of Gray et al., "Quickly Generating Billion-Record Synthetic Databases".
+     */
+    static class ZipfianGenerator {
+        private final int n;
+        private final double theta, alpha, zetaN, eta;
+
+        ZipfianGenerator(int n, double theta) {
+            if (n <= 0 || theta <= 0 || theta >= 1) {
+                throw new IllegalArgumentException("Zipfian needs n > 0 and 0 < theta < 1.");
+            }
+            this.n = n;
+            this.theta = theta;
+            this.alpha = 1 / (1 - theta);
+            this.zetaN = zeta(n, theta);
+            this.eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta(2, theta) / zetaN);
+        }
+
+        int next(SplittableRandom random) {
+            double u = random.nextDouble();
+            double uz = u * zetaN;
+            if (uz < 1) {
+                return 0;
+            }
+            if (uz < 1 + Math.pow(0.5, theta)) {
+                return Math.min(1, n - 1);
+            }
+            return (int) Math.min(n - 1, (long) (n * Math.pow(eta * u - eta + 1, alpha)));
+        }
+
+        private static double zeta(int n, double theta) {
+            double sum = 0;
+            for (int i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Records latencies in nanoseconds in log-linear buckets: exact below 128ns, and within
+     * 1/64 (about 1.5%) above that. Fixed size, no allocation while recording, and histograms
+     * from different threads can be added together.
+     */
+    static class LatencyHistogram {
+        private static final int SUB_BUCKETS = 64;
+        private final long[] counts = new long[(64 - 6) * SUB_BUCKETS];
+        private long count, max;
+
+        void record(long nanos) {
+            long value = Math.max(0, nanos);
+            counts[index(value)]++;
+            count++;
+            max = Math.max(max, value);
+        }
+
+        void add(LatencyHistogram other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            count += other.count;
+            max = Math.max(max, other.max);
+        }
+
+        long count() {
+            return count;
+        }
+
+        long max() {
+            return max;
+        }
+
+        /**
+         * Returns the latency in nanoseconds below which the given percentage of recorded values fall.
+         */
+        long percentile(double percent) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percent / 100 * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= Math.max(1, rank)) {
+                    return Math.min(max, highestValue(i));
+                }
+            }
+            return max;
+        }
+
+        private static int index(long value) {
+            if (value < 2 * SUB_BUCKETS) {
+                return (int) value;
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+            return shift * SUB_BUCKETS + (int) (value >>> shift);
+        }
+
+        private static long highestValue(int index) {
+            if (index < 2 * SUB_BUCKETS) {
+                return index;
+            }
+            int shift = index / SUB_BUCKETS - 1;
+            long top = index % SUB_BUCKETS + SUB_BUCKETS;
+            return ((top + 1) << shift) - 1;
+        }
+    }
+}
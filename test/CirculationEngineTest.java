@@ -0,0 +1,162 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Behavior checks for CirculationEngine: loans, hold queues, due dates, hold expiry and snapshots.
+ * Runs without a test framework and exits with status 1 if a check fails, for example:
+ *   javac -d out/test src/*.java test/*.java && java -cp out/test CirculationEngineTest
+ */
+public class CirculationEngineTest {
+
+    private static final long LOAN = 1000, HOLD = 100;
+
+    private static int failures;
+
+    public static void main(String[] args) {
+        checkoutAndReturn();
+        holdQueueServesPatronsInOrder();
+        expiredHoldMovesToNextPatron();
+        dueDateFlagsOverdueLoan();
+        unheldReservationIsReleasedByReturn();
+        supersededDeadlinesArePurged();
+        snapshotRestoresLoansAndHolds();
+        restoreSkipsBooksThatChanged();
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All circulation checks passed");
+    }
+
+    private static void checkoutAndReturn() {
+        CirculationEngine engine = newEngine("1");
+        check(engine.checkout("1", "ann", 0).equals(CirculationEngine.CHECKED_OUT), "checkout marks the book Checked Out");
+        check("ann".equals(engine.getBorrower("1")), "checkout records the borrower");
+        check(engine.getDueDate("1") == LOAN, "due date is one loan period after checkout");
+        expectFailure(() -> engine.checkout("1", "bob", 0), "a checked out book cannot be checked out again");
+        check(engine.returnBook("1", 10).equals(CirculationEngine.AVAILABLE), "return makes the book Available");
+        check(engine.getBorrower("1") == null && engine.getDueDate("1") == -1, "return clears the loan");
+        expectFailure(() -> engine.returnBook("1", 10), "an available book cannot be returned");
+    }
+
+    private static void holdQueueServesPatronsInOrder() {
+        CirculationEngine engine = newEngine("1");
+        engine.checkout("1", "ann", 0);
+        engine.reserve("1", "bob", 0);
+        engine.reserve("1", "cy", 0);
+        check(engine.getHoldQueue("1").equals(Arrays.asList("bob", "cy")), "holds queue up in order");
+        expectFailure(() -> engine.reserve("1", "bob", 0), "a patron cannot hold the same book twice");
+
+        check(engine.returnBook("1", 10).equals(CirculationEngine.RESERVED), "a return with holds reserves the book");
+        expectFailure(() -> engine.checkout("1", "cy", 10), "only the first patron in line can check out");
+        check(engine.checkout("1", "bob", 10).equals(CirculationEngine.CHECKED_OUT), "the holder can check out");
+        check(engine.getHoldQueue("1").equals(Collections.singletonList("cy")), "checkout removes the holder from the queue");
+    }
+
+    private static void expiredHoldMovesToNextPatron() {
+        CirculationEngine engine = newEngine("1");
+        engine.reserve("1", "bob", 0);
+        engine.reserve("1", "cy", 0);
+        check(engine.processDue(HOLD - 1).isEmpty(), "a hold does not expire early");
+        check(engine.processDue(HOLD).isEmpty() && engine.getHoldQueue("1").equals(Collections.singletonList("cy")),
+                "an expired hold passes the book to the next patron, which keeps it Reserved");
+        Map<String, String> changed = engine.processDue(2 * HOLD);
+        check(changed.equals(Collections.singletonMap("1", CirculationEngine.AVAILABLE)),
+                "the last expired hold makes the book Available");
+    }
+
+    private static void dueDateFlagsOverdueLoan() {
+        CirculationEngine engine = newEngine("1");
+        engine.checkout("1", "ann", 0);
+        engine.processDue(LOAN - 1);
+        check(!engine.isOverdue("1"), "a loan is not overdue before its due date");
+        engine.processDue(LOAN);
+        check(engine.isOverdue("1"), "a loan is overdue once its due date passes");
+        engine.returnBook("1", LOAN + 1);
+        check(!engine.isOverdue("1"), "returning clears the overdue flag");
+    }
+
+    private static void unheldReservationIsReleasedByReturn() {
+        CirculationEngine engine = new CirculationEngine(LOAN, HOLD);
+        engine.track("1", CirculationEngine.RESERVED);
+        expectFailure(() -> engine.checkout("1", "ann", 0), "a Reserved book with no holder cannot be checked out");
+        check(engine.returnBook("1", 0).equals(CirculationEngine.AVAILABLE), "return releases a Reserved book with no holder");
+    }
+
+    private static void supersededDeadlinesArePurged() {
+        CirculationEngine engine = new CirculationEngine(LOAN, HOLD);
+        for (int b = 0; b < 10; b++) {
+            engine.track("B" + b, CirculationEngine.AVAILABLE);
+        }
+        for (int i = 0; i < 100_000; i++) {
+            engine.checkout("B" + i % 10, "ann", i);
+            engine.returnBook("B" + i % 10, i);
+        }
+        check(engine.queuedDeadlines() <= 100, "superseded deadlines do not pile up (" + engine.queuedDeadlines() + " queued)");
+    }
+
+    private static void snapshotRestoresLoansAndHolds() {
+        CirculationEngine engine = newEngine("1", "2");
+        engine.checkout("1", "ann", 0);
+        engine.reserve("1", "bob", 0);
+        engine.reserve("2", "cy", 0);
+
+        CirculationEngine restored = new CirculationEngine(LOAN, HOLD);
+        int skipped = restored.restore(engine.snapshot(), availabilities(
+                "1", CirculationEngine.CHECKED_OUT, "2", CirculationEngine.RESERVED));
+        check(skipped == 0, "a fresh snapshot restores every row");
+        check("ann".equals(restored.getBorrower("1")) && restored.getDueDate("1") == LOAN, "the loan survives a restore");
+        check(restored.getHoldQueue("1").equals(Collections.singletonList("bob")), "the hold queue survives a restore");
+        check(restored.processDue(HOLD).equals(Collections.singletonMap("2", CirculationEngine.AVAILABLE)),
+                "a pending hold expiry is scheduled again after a restore");
+        restored.processDue(LOAN);
+        check(restored.isOverdue("1"), "a pending due date is scheduled again after a restore");
+    }
+
+    private static void restoreSkipsBooksThatChanged() {
+        CirculationEngine engine = newEngine("1", "2");
+        engine.checkout("1", "ann", 0);
+        engine.checkout("2", "bob", 0);
+
+        CirculationEngine restored = new CirculationEngine(LOAN, HOLD);
+        int skipped = restored.restore(engine.snapshot(), availabilities("1", CirculationEngine.AVAILABLE));
+        check(skipped == 2, "rows of changed or deleted books are skipped");
+        check(restored.getBorrower("1") == null && restored.getBorrower("2") == null, "skipped rows are not tracked");
+        expectFailure(() -> newEngine("3").checkout("3", "a,b", 0), "patron names with commas are rejected");
+    }
+
+    private static CirculationEngine newEngine(String... bookIds) {
+        CirculationEngine engine = new CirculationEngine(LOAN, HOLD);
+        for (String id : bookIds) {
+            engine.track(id, CirculationEngine.AVAILABLE);
+        }
+        return engine;
+    }
+
+    private static Function<String, String> availabilities(String... pairs) {
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            map.put(pairs[i], pairs[i + 1]);
+        }
+        return map::get;
+    }
+
+    private static void expectFailure(Runnable action, String description) {
+        try {
+            action.run();
+            check(false, description);
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            check(true, description);
+        }
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            failures++;
+            System.out.println("FAILED: " + description);
+        }
+    }
+}
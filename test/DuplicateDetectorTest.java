@@ -0,0 +1,107 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Behavior checks for DuplicateDetector: normalization, MinHash similarity and LSH clustering.
+ * Runs without a test framework and exits with status 1 if a check fails, for example:
+ *   javac -d out/test src/*.java test/*.java && java -cp out/test DuplicateDetectorTest
+ */
+public class DuplicateDetectorTest {
+
+    private static int failures;
+
+    public static void main(String[] args) {
+        normalizationIgnoresCaseAccentsAndPunctuation();
+        addReportsNearDuplicates();
+        clustersGroupVariantsOfTheSameWork();
+        removeAndReindexUpdateClusters();
+        signaturesAreStableBetweenDetectors();
+        exactCopyIsFoundAmongManyBooks();
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All duplicate detection checks passed");
+    }
+
+    private static void normalizationIgnoresCaseAccentsAndPunctuation() {
+        check(DuplicateDetector.normalize("J.R.R. Tolkien").equals(DuplicateDetector.normalize("j r r  TOLKIEN")),
+                "case, dots and extra spaces are ignored");
+        check(DuplicateDetector.normalize("Les Mis\u00e9rables").equals("les miserables"), "accents are stripped");
+    }
+
+    private static void addReportsNearDuplicates() {
+        DuplicateDetector detector = new DuplicateDetector();
+        check(detector.add("1", "The Lord of the Rings", "J.R.R. Tolkien").isEmpty(), "the first book has no duplicates");
+        check(detector.add("2", "Lord of the Rings, The", "J. R. R. Tolkien").contains("1"),
+                "a reordered title with a reformatted author is reported as a duplicate");
+        check(detector.add("3", "Pride and Prejudice", "Jane Austen").isEmpty(), "an unrelated book is not reported");
+        check(detector.similarity("1", "2") >= 0.6, "near duplicates are estimated above the threshold");
+        check(detector.similarity("1", "3") < 0.2, "unrelated books are estimated far below the threshold");
+        check(detector.similarity("1", "missing") == 0, "a book that is not indexed has similarity 0");
+    }
+
+    private static void clustersGroupVariantsOfTheSameWork() {
+        DuplicateDetector detector = new DuplicateDetector();
+        detector.add("1", "The Lord of the Rings", "J.R.R. Tolkien");
+        detector.add("2", "Pride and Prejudice", "Jane Austen");
+        detector.add("3", "Lord of the Rings", "Tolkien, J.R.R.");
+        detector.add("4", "Pride & Prejudice", "Austen, Jane");
+        detector.add("5", "Dune", "Frank Herbert");
+        detector.add("6", "THE LORD OF THE RINGS", "j r r tolkien");
+
+        List<List<String>> clusters = detector.findClusters();
+        check(clusters.equals(Arrays.asList(Arrays.asList("1", "3", "6"), Arrays.asList("2", "4"))),
+                "variants cluster together in index order: " + clusters);
+        check(detector.report().startsWith("2 possible duplicate group(s) among 6 books"), "the report counts the groups");
+    }
+
+    private static void removeAndReindexUpdateClusters() {
+        DuplicateDetector detector = new DuplicateDetector();
+        detector.add("1", "The Lord of the Rings", "J.R.R. Tolkien");
+        detector.add("2", "The Lord of the Rings", "J.R.R. Tolkien");
+        check(detector.findClusters().size() == 1, "identical books form a cluster");
+
+        detector.remove("2");
+        check(detector.findClusters().isEmpty(), "removing a book breaks up its cluster");
+        check(detector.report().startsWith("No likely duplicates among 1 books"), "the report reflects the removal");
+
+        detector.add("2", "Dune", "Frank Herbert");
+        detector.add("2", "The Lord of the Rings", "J.R.R. Tolkien"); // Re-indexed after an update
+        check(detector.findClusters().equals(Collections.singletonList(Arrays.asList("1", "2"))),
+                "re-indexing a book replaces its old entry");
+    }
+
+    private static void signaturesAreStableBetweenDetectors() {
+        DuplicateDetector first = new DuplicateDetector(), second = new DuplicateDetector();
+        for (DuplicateDetector detector : Arrays.asList(first, second)) {
+            detector.add("1", "The Lord of the Rings", "J.R.R. Tolkien");
+            detector.add("2", "The Lord of the Ring", "Tolkien");
+        }
+        check(first.similarity("1", "2") == second.similarity("1", "2"), "signatures do not depend on the instance");
+    }
+
+    private static void exactCopyIsFoundAmongManyBooks() {
+        DuplicateDetector detector = new DuplicateDetector();
+        String[] words = {"Silent", "River", "Shadow", "Garden", "Empire", "Winter", "Glass", "Memory", "Ocean", "Stone"};
+        for (int i = 0; i < 1000; i++) {
+            String title = words[i % 10] + " " + words[i / 10 % 10] + " " + words[i / 100 % 10] + " " + i;
+            detector.add("B" + i, title, "Author " + (i * 7919 % 1000));
+        }
+        check(detector.add("X", words[1] + " " + words[2] + " " + words[3] + " 321", "Author " + (321 * 7919 % 1000))
+                .contains("B321"), "an exact copy is found among 1000 books");
+        boolean clustered = false;
+        for (List<String> cluster : detector.findClusters()) {
+            clustered |= cluster.contains("X") && cluster.contains("B321");
+        }
+        check(clustered, "the copy and its original end up in the same cluster");
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            failures++;
+            System.out.println("FAILED: " + description);
+        }
+    }
+}
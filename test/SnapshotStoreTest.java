@@ -0,0 +1,204 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Behavior checks for SnapshotStore: checksums, backups, recovery from damaged files and background saves.
+ * Runs without a test framework and exits with status 1 if a check fails, for example:
+ *   javac -d out/test src/*.java test/*.java && java -cp out/test SnapshotStoreTest
+ */
+public class SnapshotStoreTest {
+
+    private static final List<Book> FIRST = Collections.singletonList(
+            new Book("1", "Dune", "Frank Herbert", "Science", "Available"));
+    private static final List<Book> SECOND = Arrays.asList(
+            new Book("1", "Dune", "Frank Herbert", "Science", "Checked Out"),
+            new Book("2", "Emma", "Jane Austen", "Fiction", "Reserved"));
+
+    private static int failures;
+
+    // Every check works in its own directory below this one, which is deleted at the end
+    private static Path root;
+
+    public static void main(String[] args) throws IOException {
+        root = Files.createTempDirectory("snapshot-test");
+        try {
+            runChecks();
+        } finally {
+            try (Stream<Path> paths = Files.walk(root)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All snapshot checks passed");
+    }
+
+    private static void runChecks() throws IOException {
+        missingFileLoadsEmpty();
+        savedBooksLoadBack();
+        firstSaveCreatesBackup();
+        backupHoldsPreviousSnapshot();
+        corruptFileFallsBackToBackup();
+        truncatedFileFallsBackToBackup();
+        truncatedFileWithoutBackupIsRejected();
+        legacyFileIsLoadedAndKeptAsBackup();
+        damagedFilesAreLeftUntouched();
+        backgroundSavesAreCoalesced();
+        rowsKeepEmptyFields();
+    }
+
+    private static void missingFileLoadsEmpty() throws IOException {
+        SnapshotStore<Book> store = newStore(newDirectory());
+        check(store.load().isEmpty() && !store.loadedFromBackup(), "a missing file loads as an empty list");
+    }
+
+    private static void savedBooksLoadBack() throws IOException {
+        Path directory = newDirectory();
+        newStore(directory).write(SECOND);
+        SnapshotStore<Book> store = newStore(directory);
+        check(describe(store.load()).equals(describe(SECOND)) && !store.loadedFromBackup(), "saved books load back");
+    }
+
+    private static void firstSaveCreatesBackup() throws IOException {
+        Path directory = newDirectory();
+        newStore(directory).write(FIRST);
+        check(Files.exists(directory.resolve("books.csv.bak")), "the first save also writes a backup");
+        check(!Files.exists(directory.resolve("books.csv.tmp")) && !Files.exists(directory.resolve("books.csv.bak.tmp")),
+                "no temporary files are left behind");
+    }
+
+    private static void backupHoldsPreviousSnapshot() throws IOException {
+        Path directory = newDirectory();
+        SnapshotStore<Book> store = newStore(directory);
+        store.write(FIRST);
+        byte[] first = Files.readAllBytes(directory.resolve("books.csv"));
+        store.write(SECOND);
+        check(Arrays.equals(first, Files.readAllBytes(directory.resolve("books.csv.bak"))),
+                "the backup holds the previous snapshot");
+    }
+
+    private static void corruptFileFallsBackToBackup() throws IOException {
+        Path directory = savedTwice();
+        Path file = directory.resolve("books.csv");
+        byte[] data = Files.readAllBytes(file);
+        data[data.length / 2] ^= 1;
+        Files.write(file, data);
+
+        SnapshotStore<Book> store = newStore(directory);
+        check(describe(store.load()).equals(describe(FIRST)) && store.loadedFromBackup(), "a corrupt file falls back to the backup");
+        check(store.getRejections().equals(Collections.singletonList("books.csv: Checksum mismatch")),
+                "the rejection names the checksum mismatch");
+    }
+
+    private static void truncatedFileFallsBackToBackup() throws IOException {
+        Path directory = savedTwice();
+        Path file = directory.resolve("books.csv");
+        Files.write(file, Arrays.copyOf(Files.readAllBytes(file), 40));
+
+        SnapshotStore<Book> store = newStore(directory);
+        check(describe(store.load()).equals(describe(FIRST)) && store.loadedFromBackup(), "a truncated file falls back to the backup");
+    }
+
+    private static void truncatedFileWithoutBackupIsRejected() throws IOException {
+        Path directory = savedTwice();
+        Path file = directory.resolve("books.csv");
+        Files.write(file, Arrays.copyOf(Files.readAllBytes(file), 40));
+        Files.delete(directory.resolve("books.csv.bak"));
+        expectLoadFailure(newStore(directory), "a truncated snapshot is not mistaken for a legacy file");
+    }
+
+    private static void legacyFileIsLoadedAndKeptAsBackup() throws IOException {
+        Path directory = newDirectory();
+        Path file = directory.resolve("books.csv");
+        Files.write(file, "1,Dune,Frank Herbert,Science,Available\n".getBytes(StandardCharsets.UTF_8));
+
+        SnapshotStore<Book> store = newStore(directory);
+        check(describe(store.load()).equals(describe(FIRST)), "a file from before checksums still loads");
+        store.write(SECOND);
+        Files.delete(file);
+        SnapshotStore<Book> reopened = newStore(directory);
+        check(describe(reopened.load()).equals(describe(FIRST)) && reopened.loadedFromBackup(),
+                "the legacy books are kept as a checksummed backup");
+    }
+
+    private static void damagedFilesAreLeftUntouched() throws IOException {
+        Path directory = newDirectory();
+        Path file = directory.resolve("books.csv"), backup = directory.resolve("books.csv.bak");
+        Files.write(file, "#snapshot=1\ngarbage".getBytes(StandardCharsets.UTF_8));
+        Files.write(backup, "#snapshot=1\nmore garbage".getBytes(StandardCharsets.UTF_8));
+
+        SnapshotStore<Book> store = newStore(directory);
+        expectLoadFailure(store, "loading fails when both files are damaged");
+        check(store.getRejections().size() == 2, "both files are listed as rejected");
+        check(new String(Files.readAllBytes(backup), StandardCharsets.UTF_8).endsWith("more garbage"),
+                "a failed load does not touch the files");
+    }
+
+    private static void backgroundSavesAreCoalesced() throws IOException {
+        Path directory = newDirectory();
+        SnapshotStore<Book> store = newStore(directory);
+        List<Book> books = Collections.synchronizedList(new ArrayList<>());
+        int[] written = new int[1];
+        for (int i = 0; i < 1000; i++) {
+            books.add(new Book("B" + i, "Title " + i, "Author", "Fiction", "Available"));
+            store.saveInBackground(() -> new ArrayList<>(books), () -> written[0]++);
+        }
+        check(store.close(), "close waits for the last background save");
+        check(written[0] >= 1 && written[0] < 1000, "queued saves are merged (" + written[0] + " writes)");
+        check(newStore(directory).load().size() == 1000, "the last background save holds every change");
+    }
+
+    private static void rowsKeepEmptyFields() throws IOException {
+        Path directory = newDirectory();
+        SnapshotStore<String[]> store = new SnapshotStore<>(directory.resolve("rows.csv"), SnapshotStore.ROWS, e -> { });
+        store.write(Collections.singletonList(new String[]{"1", "", "x", ""}));
+        List<String[]> rows = store.load();
+        check(rows.size() == 1 && Arrays.equals(rows.get(0), new String[]{"1", "", "x", ""}), "rows keep empty fields");
+    }
+
+    private static Path savedTwice() throws IOException {
+        Path directory = newDirectory();
+        SnapshotStore<Book> store = newStore(directory);
+        store.write(FIRST);
+        store.write(SECOND);
+        return directory;
+    }
+
+    private static Path newDirectory() throws IOException {
+        return Files.createTempDirectory(root, "check");
+    }
+
+    private static SnapshotStore<Book> newStore(Path directory) {
+        return new SnapshotStore<>(directory.resolve("books.csv"), SnapshotStore.BOOKS, e -> { });
+    }
+
+    private static String describe(List<Book> books) {
+        return books.toString();
+    }
+
+    private static void expectLoadFailure(SnapshotStore<Book> store, String description) {
+        try {
+            store.load();
+            check(false, description);
+        } catch (IOException e) {
+            check(true, description);
+        }
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            failures++;
+            System.out.println("FAILED: " + description);
+        }
+    }
+}